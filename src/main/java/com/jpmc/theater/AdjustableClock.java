@@ -0,0 +1,56 @@
+package com.jpmc.theater;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.atomic.AtomicReference;
+
+/*
+A Clock which only moves when told to. Safe to read from many threads while one thread drives it.
+ */
+public class AdjustableClock extends Clock {
+    private final AtomicReference<Instant> now;
+    private final ZoneId zone;
+
+    public AdjustableClock(Instant start, ZoneId zone) {
+        this(new AtomicReference<>(start), zone);
+    }
+
+    public AdjustableClock(LocalDateTime start, ZoneId zone) {
+        this(start.atZone(zone).toInstant(), zone);
+    }
+
+    private AdjustableClock(AtomicReference<Instant> now, ZoneId zone) {
+        if (now.get() == null || zone == null) {
+            throw new IllegalArgumentException("Start instant and zone can not be null");
+        }
+        this.now = now;
+        this.zone = zone;
+    }
+
+    public void setTime(LocalDateTime time) {
+        now.set(time.atZone(zone).toInstant());
+    }
+
+    public void advance(Duration duration) {
+        now.updateAndGet(i -> i.plus(duration));
+    }
+
+    @Override
+    public ZoneId getZone() {
+        return zone;
+    }
+
+    // shares the underlying time so adjustments are visible through both clocks
+    @Override
+    public Clock withZone(ZoneId zone) {
+        return new AdjustableClock(now, zone);
+    }
+
+    @Override
+    public Instant instant() {
+        return now.get();
+    }
+}
@@ -0,0 +1,16 @@
+package com.jpmc.theater;
+
+import lombok.Value;
+
+import java.time.Duration;
+
+/*
+A showing offered in place of the one requested, with what it would cost and how far off it starts
+ */
+@Value
+public class AlternativeShowing {
+    private Showing showing;
+    private int remainingSeats;
+    private double ticketPrice;
+    private Duration timeDistance;
+}
@@ -0,0 +1,26 @@
+package com.jpmc.theater;
+
+import lombok.Value;
+
+import java.time.Clock;
+import java.time.LocalDate;
+
+/*
+DateProvider backed by a java.time.Clock - use a fixed or AdjustableClock for tests and replays
+ */
+@Value
+public class ClockDateProvider implements DateProvider {
+    private Clock clock;
+
+    public ClockDateProvider(Clock clock) {
+        if (clock == null) {
+            throw new IllegalArgumentException("Clock can not be null");
+        }
+        this.clock = clock;
+    }
+
+    @Override
+    public LocalDate currentDate() {
+        return LocalDate.now(clock);
+    }
+}
@@ -0,0 +1,134 @@
+package com.jpmc.theater;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+
+/*
+Token bucket per Customer id. Buckets refill lazily when touched, so there is no background thread,
+and only the bucket of the calling customer is locked.
+
+Buckets idle for longer than idleTimeout are evicted by a sweep that runs once per idleTimeout. The sweep
+is spread over requests: whichever caller wins the sweep lock checks at most SWEEP_BATCH buckets and
+moves on, so no single request pays for walking every customer. idleTimeout is never shorter than the
+time to refill an empty bucket, so an evicted bucket was already full and recreating it on the next
+request changes nothing.
+ */
+public class CustomerRateLimiter {
+    static final int SWEEP_BATCH = 64;
+
+    private final ConcurrentMap<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final double capacity;
+    private final double tokensPerNano;
+    private final long idleTimeoutNanos;
+    private final LongSupplier ticker;
+    private final AtomicLong nextSweep;
+    private final AtomicLong rejected = new AtomicLong();
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    // guarded by sweepLock; non null while a sweep is part way through
+    private Iterator<Map.Entry<String, Bucket>> sweep;
+
+    public CustomerRateLimiter(int burst, int requestsPerSecond, Duration idleTimeout) {
+        this(burst, requestsPerSecond, idleTimeout, System::nanoTime);
+    }
+
+    public CustomerRateLimiter(int burst, int requestsPerSecond, Duration idleTimeout, LongSupplier ticker) {
+        if (burst < 1 || requestsPerSecond < 1) {
+            throw new IllegalArgumentException("Burst and requests per second must be at least 1");
+        }
+        this.capacity = burst;
+        this.tokensPerNano = requestsPerSecond / 1_000_000_000.0;
+        long refillNanos = (long) Math.ceil(capacity / tokensPerNano);
+        this.idleTimeoutNanos = Math.max(refillNanos, idleTimeout == null ? 0 : idleTimeout.toNanos());
+        this.ticker = ticker;
+        this.nextSweep = new AtomicLong(ticker.getAsLong() + idleTimeoutNanos);
+    }
+
+    public boolean tryAcquire(Customer customer) {
+        if (customer == null || customer.getId() == null) {
+            throw new IllegalArgumentException("Customer id can not be null when rate limiting");
+        }
+        long now = ticker.getAsLong();
+        sweepIfDue(now);
+        while (true) {
+            Bucket bucket = buckets.computeIfAbsent(customer.getId(), id -> new Bucket(capacity, now));
+            synchronized (bucket) {
+                // evicted between lookup and lock; its replacement is the one that counts
+                if (bucket.evicted) {
+                    continue;
+                }
+                if (bucket.tryTake(now, capacity, tokensPerNano)) {
+                    return true;
+                }
+            }
+            rejected.incrementAndGet();
+            return false;
+        }
+    }
+
+    public int trackedCustomers() {
+        return buckets.size();
+    }
+
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    private void sweepIfDue(long now) {
+        if (now - nextSweep.get() < 0 || !sweepLock.tryLock()) {
+            return;
+        }
+        try {
+            if (sweep == null) {
+                sweep = buckets.entrySet().iterator();
+            }
+            for (int i = 0; i < SWEEP_BATCH && sweep.hasNext(); i++) {
+                Map.Entry<String, Bucket> entry = sweep.next();
+                Bucket bucket = entry.getValue();
+                synchronized (bucket) {
+                    if (!bucket.evicted && bucket.idleSince(now, idleTimeoutNanos)) {
+                        bucket.evicted = true;
+                        buckets.remove(entry.getKey(), bucket);
+                    }
+                }
+            }
+            if (!sweep.hasNext()) {
+                sweep = null;
+                nextSweep.set(now + idleTimeoutNanos);
+            }
+        } finally {
+            sweepLock.unlock();
+        }
+    }
+
+    // all state guarded by the bucket's monitor
+    private static class Bucket {
+        private double tokens;
+        private long lastRefill;
+        private boolean evicted;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.lastRefill = now;
+        }
+
+        boolean tryTake(long now, double capacity, double tokensPerNano) {
+            tokens = Math.min(capacity, tokens + (now - lastRefill) * tokensPerNano);
+            lastRefill = now;
+            if (tokens >= 1.0) {
+                tokens -= 1.0;
+                return true;
+            }
+            return false;
+        }
+
+        boolean idleSince(long now, long idleNanos) {
+            return now - lastRefill >= idleNanos;
+        }
+    }
+}
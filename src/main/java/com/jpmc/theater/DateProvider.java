@@ -0,0 +1,10 @@
+package com.jpmc.theater;
+
+import java.time.LocalDate;
+
+/*
+Source of "today" for the Theater. Injected so schedules can be replayed or simulated on any date
+ */
+public interface DateProvider {
+    LocalDate currentDate();
+}
@@ -2,9 +2,10 @@ package com.jpmc.theater;
 
 import java.time.LocalDate;
 
-public enum LocalDateProvider {
+public enum LocalDateProvider implements DateProvider {
     INSTANCE;
 
+    @Override
     public LocalDate currentDate() {
             return LocalDate.now();
     }
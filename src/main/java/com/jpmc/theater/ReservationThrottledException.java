@@ -0,0 +1,20 @@
+package com.jpmc.theater;
+
+/*
+The customer is sending reservations faster than their allowance. Unlike a null Reservation (sold out or
+no such showing) the caller should back off and retry later rather than look for another showing.
+ */
+public class ReservationThrottledException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String customerId;
+
+    public ReservationThrottledException(String customerId) {
+        super("Too many reservation requests from customer " + customerId);
+        this.customerId = customerId;
+    }
+
+    public String getCustomerId() {
+        return customerId;
+    }
+}
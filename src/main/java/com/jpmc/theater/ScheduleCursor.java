@@ -0,0 +1,45 @@
+package com.jpmc.theater;
+
+import lombok.Value;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/*
+Sort position of the last entry on a page. Pages resume strictly after it, so showings added or sold out
+between requests do not shift later pages the way an offset would.
+ */
+@Value
+class ScheduleCursor {
+    private double ticketPrice;
+    private LocalDateTime showTime;
+    private String title;
+    private int sequence;
+
+    static ScheduleCursor of(ScheduleEntry entry) {
+        return new ScheduleCursor(entry.getTicketPrice(), entry.getShowing().getShowStartTime(),
+                entry.getShowing().getMovie().getTitle(), entry.getSequence());
+    }
+
+    String encode() {
+        // title goes last as it is the only field which may contain the separator
+        String raw = ticketPrice + "|" + showTime + "|" + sequence + "|" + title;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ScheduleCursor decode(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] fields = raw.split("\\|", 4);
+            if (fields.length != 4) {
+                throw new IllegalArgumentException("Invalid schedule cursor");
+            }
+            return new ScheduleCursor(Double.parseDouble(fields[0]), LocalDateTime.parse(fields[1]), fields[3],
+                    Integer.parseInt(fields[2]));
+        } catch (DateTimeParseException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid schedule cursor", e);
+        }
+    }
+}
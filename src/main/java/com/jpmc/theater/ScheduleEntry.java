@@ -0,0 +1,13 @@
+package com.jpmc.theater;
+
+import lombok.Value;
+
+/*
+A Showing as it appears in a rendered schedule
+ */
+@Value
+public class ScheduleEntry {
+    private Showing showing;
+    private int sequence;
+    private double ticketPrice;
+}
@@ -0,0 +1,12 @@
+package com.jpmc.theater;
+
+import lombok.Value;
+
+import java.util.List;
+
+@Value
+public class SchedulePage {
+    private List<ScheduleEntry> entries;
+    // pass back in ScheduleQuery.cursor for the following page; null on the last page
+    private String nextCursor;
+}
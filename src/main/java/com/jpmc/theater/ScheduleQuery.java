@@ -0,0 +1,72 @@
+package com.jpmc.theater;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/*
+Which slice of the schedule to render. Every filter is optional; from/to and minPrice/maxPrice are inclusive.
+ */
+@Value
+public class ScheduleQuery {
+    public static final int DEFAULT_PAGE_SIZE = 20;
+    public static final int MAX_PAGE_SIZE = 200;
+
+    public enum SortBy {
+        TIME(Comparator.comparing(ScheduleCursor::getShowTime)
+                .thenComparing(ScheduleCursor::getTitle)
+                .thenComparingInt(ScheduleCursor::getSequence)),
+        PRICE(Comparator.comparingDouble(ScheduleCursor::getTicketPrice)
+                .thenComparing(TIME.order));
+
+        final Comparator<ScheduleCursor> order;
+
+        SortBy(Comparator<ScheduleCursor> order) {
+            this.order = order;
+        }
+    }
+
+    private Movie movie;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private Double minPrice;
+    private Double maxPrice;
+    private SortBy sortBy;
+    private int pageSize;
+    private String cursor;
+
+    @Builder
+    public ScheduleQuery(Movie movie, LocalDateTime from, LocalDateTime to, Double minPrice, Double maxPrice,
+                         SortBy sortBy, Integer pageSize, String cursor) {
+        if (from != null && to != null && to.isBefore(from)) {
+            throw new IllegalArgumentException("Query window must not end before it starts");
+        }
+        if (minPrice != null && maxPrice != null && maxPrice < minPrice) {
+            throw new IllegalArgumentException("Query max price must not be below min price");
+        }
+        int size = pageSize == null ? DEFAULT_PAGE_SIZE : pageSize;
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException(String.format("Page size must be between 1 and %s", MAX_PAGE_SIZE));
+        }
+        this.movie = movie;
+        this.from = from;
+        this.to = to;
+        this.minPrice = minPrice;
+        this.maxPrice = maxPrice;
+        this.sortBy = sortBy == null ? SortBy.TIME : sortBy;
+        this.pageSize = size;
+        this.cursor = cursor;
+    }
+
+    public boolean matches(ScheduleEntry entry) {
+        LocalDateTime time = entry.getShowing().getShowStartTime();
+        double price = entry.getTicketPrice();
+        return (movie == null || movie.equals(entry.getShowing().getMovie()))
+                && (from == null || !time.isBefore(from))
+                && (to == null || !time.isAfter(to))
+                && (minPrice == null || price >= minPrice)
+                && (maxPrice == null || price <= maxPrice);
+    }
+}
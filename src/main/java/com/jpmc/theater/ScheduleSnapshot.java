@@ -0,0 +1,133 @@
+package com.jpmc.theater;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+Immutable view of the schedule plus the indexes derived from it. Theater publishes a new one on every
+addSchedule, so readers need no lock and never see a half applied change. Adding a showing only copies
+that movie's lists and the by-time index (at most one key per minute of the day); sequence and price are
+worked out from a showing's position when asked for.
+
+Seat counts are the one mutable part: a counter per Showing, kept alongside the movie's showings, bumped under
+the Theater monitor and read without it. The counters are carried over to each new snapshot so sales are not
+lost when showings are added.
+Movies keep the order they were first scheduled in; Showings are matched by identity like elsewhere.
+ */
+final class ScheduleSnapshot {
+    static final ScheduleSnapshot EMPTY = new ScheduleSnapshot(new LinkedHashMap<>(), new LinkedHashMap<>(), new TreeMap<>());
+
+    private final Map<Movie, List<Showing>> schedule;
+    // seats.get(movie).get(i) counts seats taken for schedule.get(movie).get(i)
+    private final Map<Movie, List<AtomicInteger>> seats;
+    private final NavigableMap<LocalDateTime, List<Showing>> showingsByTime;
+
+    private ScheduleSnapshot(Map<Movie, List<Showing>> schedule, Map<Movie, List<AtomicInteger>> seats,
+                             NavigableMap<LocalDateTime, List<Showing>> showingsByTime) {
+        this.schedule = Collections.unmodifiableMap(schedule);
+        this.seats = Collections.unmodifiableMap(seats);
+        this.showingsByTime = Collections.unmodifiableNavigableMap(showingsByTime);
+    }
+
+    ScheduleSnapshot withShowing(Showing showing) {
+        Movie movie = showing.getMovie();
+        List<Showing> movieShowings = movieShowings(movie);
+        // after any showing starting at the same time, as a stable sort would put it
+        int insertAt = firstIndexAfter(movieShowings, showing.getShowStartTime());
+
+        List<Showing> newShowings = new ArrayList<>(movieShowings.size() + 1);
+        newShowings.addAll(movieShowings);
+        newShowings.add(insertAt, showing);
+        Map<Movie, List<Showing>> newSchedule = new LinkedHashMap<>(schedule);
+        newSchedule.put(movie, Collections.unmodifiableList(newShowings));
+
+        List<AtomicInteger> movieSeats = seats.getOrDefault(movie, List.of());
+        List<AtomicInteger> newMovieSeats = new ArrayList<>(movieSeats.size() + 1);
+        newMovieSeats.addAll(movieSeats);
+        newMovieSeats.add(insertAt, new AtomicInteger());
+        Map<Movie, List<AtomicInteger>> newSeats = new LinkedHashMap<>(seats);
+        newSeats.put(movie, Collections.unmodifiableList(newMovieSeats));
+
+        NavigableMap<LocalDateTime, List<Showing>> newByTime = new TreeMap<>(showingsByTime);
+        List<Showing> atTime = new ArrayList<>(showingsByTime.getOrDefault(showing.getShowStartTime(), List.of()));
+        atTime.add(showing);
+        newByTime.put(showing.getShowStartTime(), List.copyOf(atTime));
+
+        return new ScheduleSnapshot(newSchedule, newSeats, newByTime);
+    }
+
+    Map<Movie, List<Showing>> getSchedule() {
+        return schedule;
+    }
+
+    List<Showing> movieShowings(Movie movie) {
+        return schedule.getOrDefault(movie, List.of());
+    }
+
+    NavigableMap<LocalDateTime, List<Showing>> getShowingsByTime() {
+        return showingsByTime;
+    }
+
+    // null when the showing is not on this schedule
+    ScheduleEntry entry(Showing showing) {
+        int index = indexOf(showing);
+        return index < 0 ? null : new ScheduleEntry(showing, index + 1, showing.calculateTicketPrice(index));
+    }
+
+    boolean tracks(Showing showing) {
+        return indexOf(showing) >= 0;
+    }
+
+    int seatsTaken(Showing showing) {
+        int index = indexOf(showing);
+        return index < 0 ? 0 : seats.get(showing.getMovie()).get(index).get();
+    }
+
+    // callers hold the Theater monitor, so check-then-add on a showing cannot oversell
+    void addSeats(Showing showing, int count) {
+        seats.get(showing.getMovie()).get(indexOf(showing)).addAndGet(count);
+    }
+
+    // binary search on start time, then look for this very Showing among those starting at the same time
+    private int indexOf(Showing showing) {
+        List<Showing> movieShowings = movieShowings(showing.getMovie());
+        LocalDateTime time = showing.getShowStartTime();
+        int lo = 0;
+        int hi = movieShowings.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (movieShowings.get(mid).getShowStartTime().isBefore(time)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        for (int i = lo; i < movieShowings.size() && movieShowings.get(i).getShowStartTime().equals(time); i++) {
+            if (movieShowings.get(i) == showing) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int firstIndexAfter(List<Showing> sorted, LocalDateTime time) {
+        int lo = 0;
+        int hi = sorted.size();
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (sorted.get(mid).getShowStartTime().isAfter(time)) {
+                hi = mid;
+            } else {
+                lo = mid + 1;
+            }
+        }
+        return lo;
+    }
+}
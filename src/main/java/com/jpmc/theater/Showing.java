@@ -81,6 +81,21 @@ public class Showing {
     }
 
 
+    /*
+        Same price as calculateTicketPrice(allShowingsForMovie) when this showing sits at position index (0 based)
+        of the movie's sorted showings, without walking the list
+     */
+    public double calculateTicketPrice(int index) {
+        double discount = List.of(
+                discountSpecialCode(),
+                index == 0 ? 3.0 : NO_DISCOUNT,
+                index == 1 ? 2.0 : NO_DISCOUNT,
+                discountAfternoons(),
+                discountSeventhOfMonth()
+        ).stream().mapToDouble(v -> v).max().getAsDouble();
+        return Math.max(movie.getTicketPrice() - discount, 0.0);
+    }
+
     private Double discountSpecialCode() {
         int specialCode = movie.getSpecialCode();
         if (specialCode != 0) {
@@ -1,7 +1,15 @@
 package com.jpmc.theater;
 
+import com.jpmc.theater.utils.ExpiringCache;
+import com.jpmc.theater.utils.Utils;
+import lombok.Value;
+
 import javax.json.Json;
 import javax.json.JsonArrayBuilder;
+import javax.json.JsonBuilderFactory;
+import javax.json.JsonObject;
+import javax.json.JsonObjectBuilder;
+import javax.json.JsonStructure;
 import javax.json.JsonWriter;
 import javax.json.JsonWriterFactory;
 import javax.json.stream.JsonGenerator;
@@ -12,64 +20,200 @@ import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
-import java.util.stream.Stream;
 
 public class Theater {
     private static final int SHOW_CAPACITY = 100;
+    public static final int DEFAULT_IDEMPOTENCY_CACHE_SIZE = 10_000;
+    public static final Duration DEFAULT_IDEMPOTENCY_TTL = Duration.ofMinutes(10);
+    // JSON factories are thread safe; creating them goes through provider lookup so do it once
+    private static final JsonBuilderFactory JSON_BUILDERS = Json.createBuilderFactory(Map.of());
+    private static final JsonWriterFactory JSON_PRETTY_WRITER = Json.createWriterFactory(Map.of(JsonGenerator.PRETTY_PRINTING, true));
 
-    LocalDateProvider provider;
-    private Map<Movie, List<Showing>> schedule = new HashMap<>();
+    DateProvider provider;
+    // replaced wholesale by addSchedule so readers can use it without the monitor
+    private volatile ScheduleSnapshot snapshot = ScheduleSnapshot.EMPTY;
     private List<Reservation> allReservations = new ArrayList<>();
+    private final ExpiringCache<RequestKey, CompletedRequest> completedRequests;
+    private final ConcurrentMap<RequestKey, PendingRequest> inFlight = new ConcurrentHashMap<>();
+    private final CustomerRateLimiter rateLimiter;
+
+    public Theater(DateProvider provider) {
+        this(provider, null);
+    }
+
+    // rateLimiter may be null for no admission control
+    public Theater(DateProvider provider, CustomerRateLimiter rateLimiter) {
+        this(provider, DEFAULT_IDEMPOTENCY_CACHE_SIZE, DEFAULT_IDEMPOTENCY_TTL, rateLimiter);
+    }
 
-    public Theater(LocalDateProvider provider) {
+    public Theater(DateProvider provider, int idempotencyCacheSize, Duration idempotencyTtl, CustomerRateLimiter rateLimiter) {
         this.provider = provider;
+        this.completedRequests = new ExpiringCache<>(idempotencyCacheSize, idempotencyTtl);
+        this.rateLimiter = rateLimiter;
     }
 
-    public boolean addSchedule(Movie movie, LocalDateTime showTime) {
+    public synchronized boolean addSchedule(Movie movie, LocalDateTime showTime) {
         // schedules are for same date only!
-        List<Showing> allShowings = getAllShowings();
-        if (allShowings.size() > 0) {
-            int existingDay = allShowings.get(0).getShowStartTime().getDayOfYear();
+        NavigableMap<LocalDateTime, List<Showing>> showingsByTime = snapshot.getShowingsByTime();
+        if (!showingsByTime.isEmpty()) {
+            int existingDay = showingsByTime.firstKey().getDayOfYear();
             if (showTime.getDayOfYear() != existingDay) {
                 return false;
             }
         }
-        List<Showing> movieShowings = new ArrayList<>(schedule.getOrDefault(movie, new ArrayList<>()));
-        movieShowings.add(new Showing(movie, showTime));
-        movieShowings.sort(Comparator.comparing(Showing::getShowStartTime));
-        schedule.put(movie, List.copyOf(movieShowings));
+        snapshot = snapshot.withShowing(new Showing(movie, showTime));
         return true;
     }
 
     public List<Showing> getMovieShowings(Movie movie) {
-        return schedule.getOrDefault(movie, List.of());
+        return snapshot.movieShowings(movie);
     }
 
-    // used for Tests
-    public void clearSchedules() {
-        schedule.clear();
+    // used for Tests; seat counts go with the showings they belong to
+    public synchronized void clearSchedules() {
+        snapshot = ScheduleSnapshot.EMPTY;
     }
 
     public List<Showing> getAllShowings() {
-        return schedule.values().stream().flatMap(List::stream).collect(Collectors.toList());
+        return snapshot.getSchedule().values().stream().flatMap(List::stream).collect(Collectors.toList());
     }
 
     public Showing findFirstShowingWithCapacity(List<Showing> showings, int howManyTickets) {
+        ScheduleSnapshot current = snapshot;
         for(Showing showing : showings) {
-            Stream<Reservation> reservations = allReservations.stream().filter(r -> r.getShowing() == showing);
-            int customerCount = reservations.map(r -> r.getAudienceCount()).mapToInt(Integer::intValue).sum();
-            if ((customerCount + howManyTickets) <= SHOW_CAPACITY) {
+            if (remainingSeats(current, showing) >= howManyTickets) {
                 return showing;
             }
         }
         return null;
     }
 
-    public synchronized Reservation reserve(Customer customer, int howManyTickets, Movie movie, LocalDateTime startTime) {
+    // scheduled showings use the seat index; anything else (e.g. dropped by clearSchedules) is counted from reservations
+    private int remainingSeats(ScheduleSnapshot current, Showing showing) {
+        if (current.tracks(showing)) {
+            return SHOW_CAPACITY - current.seatsTaken(showing);
+        }
+        int customerCount = allReservations.stream().filter(r -> r.getShowing() == showing).mapToInt(Reservation::getAudienceCount).sum();
+        return SHOW_CAPACITY - customerCount;
+    }
+
+    /*
+        Showings that can still seat howManyTickets: any showing of the same movie, plus showings of other movies
+        starting within window of the requested time. Nearest start time first, then cheapest. Prices are the ones
+        reserve charges. Reads the published schedule without taking the booking monitor, so seat counts may be a
+        reservation or two behind.
+     */
+    public List<AlternativeShowing> findAlternatives(Movie movie, LocalDateTime startTime, int howManyTickets,
+                                                     Duration window, int limit) {
+        if (movie == null || startTime == null) {
+            throw new IllegalArgumentException("Movie and start time can not be null");
+        }
+        if (howManyTickets < 1) {
+            throw new IllegalArgumentException("Tickets must be at least 1");
+        }
+        if (window == null || window.isNegative()) {
+            throw new IllegalArgumentException("Search window must be zero or more");
+        }
+        if (limit < 1) {
+            throw new IllegalArgumentException("Limit must be at least 1");
+        }
+        ScheduleSnapshot current = snapshot;
+        LocalDateTime requested = Showing.removeSeconds(startTime);
+        List<Showing> candidates = new ArrayList<>(current.movieShowings(movie));
+        current.getShowingsByTime().subMap(requested.minus(window), true, requested.plus(window), true).values().forEach(atTime ->
+            atTime.stream().filter(s -> !movie.equals(s.getMovie())).forEach(candidates::add)
+        );
+
+        return candidates.stream()
+                .filter(s -> remainingSeats(current, s) >= howManyTickets)
+                .map(s -> new AlternativeShowing(
+                        s,
+                        remainingSeats(current, s),
+                        current.entry(s).getTicketPrice(),
+                        Duration.between(requested, s.getShowStartTime()).abs()))
+                .sorted(Comparator.comparing(AlternativeShowing::getTimeDistance)
+                        .thenComparingDouble(AlternativeShowing::getTicketPrice)
+                        .thenComparing(a -> a.getShowing().getShowStartTime()))
+                .limit(limit)
+                .collect(Collectors.toList());
+    }
+
+    /*
+        Retries carrying the same idempotencyKey (per customer) get the original Reservation back without
+        consuming more seats, for as long as the key stays in the bounded cache. Failed attempts are not remembered.
+        Reusing a key for a different movie, time or ticket count is rejected.
+
+        Only the first request for a key is charged by admission control. Retries arriving while it is still in
+        flight wait for it and share its outcome - the same Reservation, null, or the same throttling - and
+        retries after it completed are answered from the cache. So a retry of a booking that went through is
+        never throttled, and duplicates can not be used to book around the rate limit.
+     */
+    public Reservation reserve(String idempotencyKey, Customer customer, int howManyTickets, Movie movie, LocalDateTime startTime) {
+        if (Utils.isBlank(idempotencyKey)) {
+            throw new IllegalArgumentException("Idempotency key can not be blank");
+        }
+        RequestKey key = new RequestKey(customer.getId(), idempotencyKey);
+        RequestFingerprint fingerprint = new RequestFingerprint(movie, Showing.removeSeconds(startTime), howManyTickets);
+        CompletedRequest previous = completedRequests.get(key);
+        if (previous != null) {
+            return previous.replay(idempotencyKey, fingerprint);
+        }
+
+        PendingRequest mine = new PendingRequest(fingerprint);
+        PendingRequest pending = inFlight.putIfAbsent(key, mine);
+        if (pending != null) {
+            return pending.await(idempotencyKey, fingerprint, customer);
+        }
+        try {
+            // the original may have completed between the cache lookup and registering
+            previous = completedRequests.get(key);
+            Reservation reservation;
+            if (previous != null) {
+                reservation = previous.replay(idempotencyKey, fingerprint);
+            } else {
+                admit(customer);
+                reservation = doReserve(customer, howManyTickets, movie, startTime);
+                if (reservation != null) {
+                    completedRequests.put(key, new CompletedRequest(fingerprint, reservation));
+                }
+            }
+            mine.result.complete(reservation);
+            return reservation;
+        } catch (RuntimeException e) {
+            mine.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            // after completing, so a newcomer either finds this entry done or finds the cached result
+            inFlight.remove(key, mine);
+        }
+    }
+
+    /*
+        Returns null when the showing is full or does not exist - findAlternatives can suggest another one.
+        Throws ReservationThrottledException when the customer is over their rate limit.
+     */
+    public Reservation reserve(Customer customer, int howManyTickets, Movie movie, LocalDateTime startTime) {
+        admit(customer);
+        return doReserve(customer, howManyTickets, movie, startTime);
+    }
+
+    // checked before the monitor and any schedule lookup; no logging here since this is what floods under attack
+    private void admit(Customer customer) {
+        if (rateLimiter != null && !rateLimiter.tryAcquire(customer)) {
+            throw new ReservationThrottledException(customer.getId());
+        }
+    }
+
+    private synchronized Reservation doReserve(Customer customer, int howManyTickets, Movie movie, LocalDateTime startTime) {
         // do we have a movie showing at that time?
-        List<Showing> showings = schedule.getOrDefault(movie, List.of());
+        ScheduleSnapshot current = snapshot;
+        List<Showing> showings = current.movieShowings(movie);
         LocalDateTime noSeconds = Showing.removeSeconds(startTime);
         List<Showing> matches = showings.stream().filter(s -> s.getShowStartTime().equals(noSeconds)).collect(Collectors.toList());
 
@@ -77,9 +221,11 @@ public class Theater {
         if (!matches.isEmpty()) {
             Showing firstShowingWithEmptySeats = findFirstShowingWithCapacity(matches, howManyTickets);
             if (firstShowingWithEmptySeats != null) {
-                double pricePerPerson = firstShowingWithEmptySeats.calculateTicketPrice(matches);
+                // priced against all of the movie's showings, the same price the schedule shows
+                double pricePerPerson = current.entry(firstShowingWithEmptySeats).getTicketPrice();
                 reservation = new Reservation(customer, firstShowingWithEmptySeats, howManyTickets, pricePerPerson);
                 allReservations.add(reservation);
+                current.addSeats(firstShowingWithEmptySeats, howManyTickets);
             } else {
                 System.err.println("No More empty seats for movie: " + movie + " and " + howManyTickets);
             }
@@ -89,6 +235,58 @@ public class Theater {
         return reservation;
     }
 
+    @Value
+    private static class RequestKey {
+        private String customerId;
+        private String idempotencyKey;
+    }
+
+    @Value
+    private static class RequestFingerprint {
+        private Movie movie;
+        private LocalDateTime startTime;
+        private int howManyTickets;
+    }
+
+    private static class PendingRequest {
+        private final RequestFingerprint fingerprint;
+        private final CompletableFuture<Reservation> result = new CompletableFuture<>();
+
+        PendingRequest(RequestFingerprint fingerprint) {
+            this.fingerprint = fingerprint;
+        }
+
+        Reservation await(String idempotencyKey, RequestFingerprint retry, Customer customer) {
+            if (!fingerprint.equals(retry)) {
+                throw new IllegalArgumentException(String.format("Idempotency key %s was already used for a different request", idempotencyKey));
+            }
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof ReservationThrottledException) {
+                    throw new ReservationThrottledException(customer.getId());
+                }
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                throw e;
+            }
+        }
+    }
+
+    @Value
+    private static class CompletedRequest {
+        private RequestFingerprint fingerprint;
+        private Reservation reservation;
+
+        Reservation replay(String idempotencyKey, RequestFingerprint retry) {
+            if (!fingerprint.equals(retry)) {
+                throw new IllegalArgumentException(String.format("Idempotency key %s was already used for a different request", idempotencyKey));
+            }
+            return reservation;
+        }
+    }
+
     public List<Reservation> getAllReservations() {
         return List.copyOf(allReservations);
     }
@@ -98,46 +296,103 @@ public class Theater {
     }
 
     public String scheduleToString() {
+        return renderText(allEntries(snapshot));
+    }
+
+    public String scheduleToString(ScheduleQuery query) {
+        return renderText(querySchedule(query).getEntries());
+    }
+
+    public String scheduleToJson() {
+        JsonArrayBuilder arrayBldr = JSON_BUILDERS.createArrayBuilder();
+        allEntries(snapshot).forEach(e -> arrayBldr.add(entryToJson(e)));
+        return writeJson(arrayBldr.build());
+    }
+
+    // {"showings": [...], "nextCursor": "..."} - nextCursor is left out on the last page
+    public String scheduleToJson(ScheduleQuery query) {
+        SchedulePage page = querySchedule(query);
+        JsonArrayBuilder arrayBldr = JSON_BUILDERS.createArrayBuilder();
+        page.getEntries().forEach(e -> arrayBldr.add(entryToJson(e)));
+        JsonObjectBuilder objectBldr = JSON_BUILDERS.createObjectBuilder().add("showings", arrayBldr);
+        if (page.getNextCursor() != null) {
+            objectBldr.add("nextCursor", page.getNextCursor());
+        }
+        return writeJson(objectBldr.build());
+    }
+
+    public SchedulePage querySchedule(ScheduleQuery query) {
+        Comparator<ScheduleCursor> order = query.getSortBy().order;
+        ScheduleCursor after = query.getCursor() == null ? null : ScheduleCursor.decode(query.getCursor());
+
+        ScheduleSnapshot current = snapshot;
+        List<ScheduleEntry> matches = candidates(current, query).stream()
+                .map(current::entry)
+                .filter(query::matches)
+                .filter(e -> after == null || order.compare(ScheduleCursor.of(e), after) > 0)
+                .sorted(Comparator.comparing(ScheduleCursor::of, order))
+                .limit(query.getPageSize() + 1L)
+                .collect(Collectors.toList());
+
+        if (matches.size() <= query.getPageSize()) {
+            return new SchedulePage(matches, null);
+        }
+        List<ScheduleEntry> page = List.copyOf(matches.subList(0, query.getPageSize()));
+        return new SchedulePage(page, ScheduleCursor.of(page.get(page.size() - 1)).encode());
+    }
+
+    // narrow down using the indexes before applying the remaining filters
+    private static Collection<Showing> candidates(ScheduleSnapshot current, ScheduleQuery query) {
+        if (query.getMovie() != null) {
+            return current.movieShowings(query.getMovie());
+        }
+        NavigableMap<LocalDateTime, List<Showing>> window = current.getShowingsByTime();
+        if (query.getFrom() != null) {
+            window = window.tailMap(query.getFrom(), true);
+        }
+        if (query.getTo() != null) {
+            window = window.headMap(query.getTo(), true);
+        }
+        return window.values().stream().flatMap(List::stream).collect(Collectors.toList());
+    }
+
+    // everything comes from the one snapshot so a concurrent addSchedule or clearSchedules can not tear a render
+    private static List<ScheduleEntry> allEntries(ScheduleSnapshot current) {
+        return current.getSchedule().values().stream().flatMap(List::stream).map(current::entry).collect(Collectors.toList());
+    }
+
+    private String renderText(List<ScheduleEntry> entries) {
         StringBuilder bldr = new StringBuilder(1024);
         bldr.append(provider.currentDate());
         bldr.append("===================================================\n");
-        schedule.keySet().stream().forEach(movie -> {
-            List<Showing> movieShowings = schedule.getOrDefault(movie, List.of());
-            movieShowings.forEach(s ->
-                bldr.append(s.computeSequence(movieShowings) + ": "
-                                   + s.getShowStartTime() + " "
-                                   + s.getMovie().getTitle() + " "
-                                   + humanReadableFormat(s.getMovie().getRunningTime())
-                                   + " $" + s.calculateTicketPrice(movieShowings))
-                        .append("\n")
-            );
+        entries.forEach(e -> {
+            Showing s = e.getShowing();
+            bldr.append(e.getSequence() + ": "
+                               + s.getShowStartTime() + " "
+                               + s.getMovie().getTitle() + " "
+                               + humanReadableFormat(s.getMovie().getRunningTime())
+                               + " $" + e.getTicketPrice())
+                    .append("\n");
         });
         bldr.append("===================================================\n");
         return bldr.toString();
     }
 
-    public String scheduleToJson() {
-        JsonArrayBuilder arrayBldr = Json.createArrayBuilder();
-        schedule.keySet().stream().forEach(movie -> {
-            List<Showing> movieShowings = schedule.getOrDefault(movie, List.of());
-            movieShowings.stream().forEach (s ->
-                arrayBldr.add(
-                    Json.createObjectBuilder().add("sequence", s.computeSequence(movieShowings))
-                        .add("showTime", s.getShowStartTime().format(DateTimeFormatter.ISO_DATE_TIME))
-                        .add("title", s.getMovie().getTitle())
-                        .add("runningTime", s.getMovie().getRunningTime().toMinutes())
-                        .add("ticketPrice",  s.calculateTicketPrice(movieShowings))
-                        .build())
-            );
-        });
+    private JsonObject entryToJson(ScheduleEntry e) {
+        Showing s = e.getShowing();
+        return JSON_BUILDERS.createObjectBuilder().add("sequence", e.getSequence())
+                .add("showTime", s.getShowStartTime().format(DateTimeFormatter.ISO_DATE_TIME))
+                .add("title", s.getMovie().getTitle())
+                .add("runningTime", s.getMovie().getRunningTime().toMinutes())
+                .add("ticketPrice", e.getTicketPrice())
+                .build();
+    }
 
-        Map<String, Boolean> configs = new HashMap<>();
-        configs.put(JsonGenerator.PRETTY_PRINTING, true);
-        JsonWriterFactory factory = Json.createWriterFactory(configs);
+    private static String writeJson(JsonStructure json) {
         StringWriter stringWriter = new StringWriter();
-        JsonWriter writer = factory.createWriter(stringWriter);
-        writer.writeArray(arrayBldr.build());
-        writer.close();
+        try (JsonWriter writer = JSON_PRETTY_WRITER.createWriter(stringWriter)) {
+            writer.write(json);
+        }
         return stringWriter.toString();
     }
 
@@ -158,12 +413,13 @@ public class Theater {
         }
     }
 
-    public static void main(String[] args) {
-        Theater theater = new Theater(LocalDateProvider.INSTANCE);
+    // the demo line-up, scheduled on whatever day the provider says it is
+    public static Theater withSampleSchedule(DateProvider provider) {
+        Theater theater = new Theater(provider);
         Movie turningRed = new Movie("Turning Red", Duration.ofMinutes(85), 11, 0);
         Movie theBatMan = new Movie("The Batman", Duration.ofMinutes(95), 9, 0);
         Movie spiderMan = new Movie("Spider-Man: No Way Home", Duration.ofMinutes(90), 12.5, 1);
-        LocalDate currentDate = LocalDateProvider.INSTANCE.currentDate();
+        LocalDate currentDate = provider.currentDate();
 
 
         theater.addSchedule(turningRed, LocalDateTime.of(currentDate, LocalTime.of(9, 0)));
@@ -175,7 +431,11 @@ public class Theater {
         theater.addSchedule(turningRed, LocalDateTime.of(currentDate, LocalTime.of(19, 30)));
         theater.addSchedule(spiderMan, LocalDateTime.of(currentDate, LocalTime.of(21, 10)));
         theater.addSchedule(theBatMan, LocalDateTime.of(currentDate, LocalTime.of(23, 0)));
+        return theater;
+    }
 
+    public static void main(String[] args) {
+        Theater theater = withSampleSchedule(LocalDateProvider.INSTANCE);
         theater.printSchedule();
         System.out.println(theater.scheduleToJson());
     }
@@ -0,0 +1,71 @@
+package com.jpmc.theater.replay;
+
+import com.jpmc.theater.Customer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/*
+Reads a recorded booking trace. One request per line, comma separated:
+
+    requestTime,customerId,customerName,movieTitle,showTime,tickets
+
+Times are ISO local date-times. Blank lines and lines starting with # are ignored.
+Entries are returned sorted by requestTime.
+ */
+public class BookingTrace {
+    private static final int FIELD_COUNT = 6;
+
+    private BookingTrace() {
+    }
+
+    public static List<TraceEntry> load(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return read(reader);
+        }
+    }
+
+    public static List<TraceEntry> read(Reader reader) throws IOException {
+        BufferedReader lines = new BufferedReader(reader);
+        List<TraceEntry> entries = new ArrayList<>();
+        String line;
+        int lineNo = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNo++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            entries.add(parse(trimmed, lineNo));
+        }
+        entries.sort(Comparator.comparing(TraceEntry::getRequestTime));
+        return entries;
+    }
+
+    static TraceEntry parse(String line, int lineNo) {
+        String[] fields = line.split(",", -1);
+        if (fields.length != FIELD_COUNT) {
+            throw new IllegalArgumentException(String.format("Line %s: expected %s fields but found %s", lineNo, FIELD_COUNT, fields.length));
+        }
+        try {
+            return new TraceEntry(
+                    LocalDateTime.parse(fields[0].trim()),
+                    new Customer(fields[2].trim(), fields[1].trim()),
+                    fields[3].trim(),
+                    LocalDateTime.parse(fields[4].trim()),
+                    Integer.parseInt(fields[5].trim())
+            );
+        } catch (DateTimeParseException | NumberFormatException e) {
+            throw new IllegalArgumentException(String.format("Line %s: %s", lineNo, e.getMessage()), e);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package com.jpmc.theater.replay;
+
+import com.jpmc.theater.AdjustableClock;
+import com.jpmc.theater.ClockDateProvider;
+import com.jpmc.theater.Movie;
+import com.jpmc.theater.Reservation;
+import com.jpmc.theater.ReservationThrottledException;
+import com.jpmc.theater.Showing;
+import com.jpmc.theater.Theater;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/*
+Feeds a recorded trace of reserve calls into a Theater from a pool of threads.
+
+With speed <= 0 entries are dispatched as fast as possible, otherwise the recorded gaps between requests
+are divided by speed (2.0 replays twice as fast).
+
+The clock follows the dispatcher: it is set to each entry's recorded request time just before that entry
+is queued. It never runs backwards, but a request still waiting in the pool may already see the time of a
+later entry - across midnight that can be the next day. Only entries already queued are affected, so with
+one thread and a trace that keeps up the lag is at most one request.
+
+Latency is measured from when a request was meant to be sent (its paced due time, or when it was queued
+at max speed) rather than when a worker picked it up, so time spent queued behind a slow theater counts
+the same way it would for a client.
+ */
+public class ReplayHarness {
+    public static final double MAX_SPEED = 0.0;
+
+    private final Theater theater;
+    private final AdjustableClock clock;
+    private final int threads;
+    private final double speed;
+
+    public ReplayHarness(Theater theater, AdjustableClock clock, int threads, double speed) {
+        if (theater == null || clock == null) {
+            throw new IllegalArgumentException("Theater and clock can not be null");
+        }
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1");
+        }
+        this.theater = theater;
+        this.clock = clock;
+        this.threads = threads;
+        this.speed = speed;
+    }
+
+    public ReplayReport replay(List<TraceEntry> trace) throws InterruptedException {
+        Map<String, Movie> moviesByTitle = theater.getAllShowings().stream()
+                .map(Showing::getMovie)
+                .distinct()
+                .collect(Collectors.toMap(Movie::getTitle, Function.identity()));
+        for (TraceEntry entry : trace) {
+            if (!moviesByTitle.containsKey(entry.getMovieTitle())) {
+                throw new IllegalArgumentException("Trace refers to unscheduled movie: " + entry.getMovieTitle());
+            }
+        }
+
+        int n = trace.size();
+        long[] latencies = new long[n];
+        Reservation[] results = new Reservation[n];
+        ReplayReport.Outcome[] outcomes = new ReplayReport.Outcome[n];
+        List<Future<?>> futures = new ArrayList<>(n);
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+
+        long start = System.nanoTime();
+        try {
+            for (int i = 0; i < n; i++) {
+                TraceEntry entry = trace.get(i);
+                long intended = speed > 0 ? pace(start, trace.get(0), entry) : System.nanoTime();
+                clock.setTime(entry.getRequestTime());
+                Movie movie = moviesByTitle.get(entry.getMovieTitle());
+                int index = i;
+                futures.add(pool.submit(() -> {
+                    try {
+                        results[index] = theater.reserve(entry.getCustomer(), entry.getTickets(), movie, entry.getShowTime());
+                        outcomes[index] = outcomeOf(results[index], movie, entry);
+                    } catch (ReservationThrottledException e) {
+                        outcomes[index] = ReplayReport.Outcome.THROTTLED;
+                    }
+                    latencies[index] = System.nanoTime() - intended;
+                }));
+            }
+            // Future.get makes the tasks' writes to results/latencies visible here
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Replayed reservation failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        return buildReport(results, outcomes, latencies, elapsed);
+    }
+
+    // reserve answers null for both, so tell them apart by whether the showing exists
+    private ReplayReport.Outcome outcomeOf(Reservation reservation, Movie movie, TraceEntry entry) {
+        if (reservation != null) {
+            return ReplayReport.Outcome.RESERVED;
+        }
+        LocalDateTime showTime = Showing.removeSeconds(entry.getShowTime());
+        boolean scheduled = theater.getMovieShowings(movie).stream().anyMatch(s -> s.getShowStartTime().equals(showTime));
+        return scheduled ? ReplayReport.Outcome.SOLD_OUT : ReplayReport.Outcome.NO_SHOWING;
+    }
+
+    // waits until the entry is due and returns when that was, even if the dispatcher is running late
+    private long pace(long start, TraceEntry first, TraceEntry entry) throws InterruptedException {
+        long recordedOffset = Duration.between(first.getRequestTime(), entry.getRequestTime()).toNanos();
+        long due = start + (long) (recordedOffset / speed);
+        long wait = due - System.nanoTime();
+        if (wait > 0) {
+            TimeUnit.NANOSECONDS.sleep(wait);
+        }
+        return due;
+    }
+
+    static ReplayReport buildReport(Reservation[] results, ReplayReport.Outcome[] outcomes, long[] latencies, Duration elapsed) {
+        Map<ReplayReport.Outcome, Integer> counts = new EnumMap<>(ReplayReport.Outcome.class);
+        for (ReplayReport.Outcome outcome : outcomes) {
+            counts.merge(outcome, 1, Integer::sum);
+        }
+        long seats = 0;
+        double revenue = 0.0;
+        Map<Double, Long> seatsByPrice = new TreeMap<>();
+        for (Reservation r : results) {
+            if (r != null) {
+                seats += r.getAudienceCount();
+                revenue += r.totalFee();
+                seatsByPrice.merge(r.getPricePerPerson(), (long) r.getAudienceCount(), Long::sum);
+            }
+        }
+
+        long[] sorted = latencies.clone();
+        Arrays.sort(sorted);
+        return new ReplayReport(
+                results.length,
+                counts.getOrDefault(ReplayReport.Outcome.RESERVED, 0),
+                counts.getOrDefault(ReplayReport.Outcome.SOLD_OUT, 0),
+                counts.getOrDefault(ReplayReport.Outcome.NO_SHOWING, 0),
+                counts.getOrDefault(ReplayReport.Outcome.THROTTLED, 0),
+                seats,
+                revenue,
+                elapsed,
+                percentile(sorted, 50),
+                percentile(sorted, 90),
+                percentile(sorted, 99),
+                percentile(sorted, 100),
+                seatsByPrice
+        );
+    }
+
+    // nearest-rank percentile over an already sorted array
+    static Duration percentile(long[] sorted, double pct) {
+        if (sorted.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(pct / 100.0 * sorted.length);
+        return Duration.ofNanos(sorted[Math.max(rank, 1) - 1]);
+    }
+
+    /*
+    Usage: ReplayHarness <trace-file> [threads] [speed]
+    Replays against the sample schedule placed on the trace's first recorded day.
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1) {
+            System.err.println("Usage: ReplayHarness <trace-file> [threads] [speed]");
+            System.exit(1);
+        }
+        List<TraceEntry> trace = BookingTrace.load(Path.of(args[0]));
+        if (trace.isEmpty()) {
+            System.err.println("Trace is empty");
+            return;
+        }
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        double speed = args.length > 2 ? Double.parseDouble(args[2]) : MAX_SPEED;
+
+        AdjustableClock clock = new AdjustableClock(trace.get(0).getRequestTime(), ZoneId.systemDefault());
+        Theater theater = Theater.withSampleSchedule(new ClockDateProvider(clock));
+        ReplayReport report = new ReplayHarness(theater, clock, threads, speed).replay(trace);
+        System.out.print(report.summary());
+    }
+}
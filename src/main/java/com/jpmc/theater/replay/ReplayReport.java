@@ -0,0 +1,46 @@
+package com.jpmc.theater.replay;
+
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Value
+public class ReplayReport {
+    public enum Outcome { RESERVED, SOLD_OUT, NO_SHOWING, THROTTLED }
+
+    private int requests;
+    private int reservations;
+    private int soldOut;
+    private int noShowing;
+    private int throttled;
+    private long seatsSold;
+    private double revenue;
+    private Duration elapsed;
+    private Duration latencyP50;
+    private Duration latencyP90;
+    private Duration latencyP99;
+    private Duration latencyMax;
+    // price per person -> seats sold at that price
+    private Map<Double, Long> seatsByPrice;
+
+    public double throughputPerSecond() {
+        long nanos = elapsed.toNanos();
+        return nanos == 0 ? 0.0 : requests * 1_000_000_000.0 / nanos;
+    }
+
+    public String summary() {
+        StringBuilder bldr = new StringBuilder(512);
+        bldr.append(String.format("requests: %s reserved: %s sold out: %s no showing: %s throttled: %s in %s ms (%.1f req/s)%n",
+                requests, reservations, soldOut, noShowing, throttled, elapsed.toMillis(), throughputPerSecond()));
+        bldr.append(String.format("latency us p50: %s p90: %s p99: %s max: %s%n",
+                micros(latencyP50), micros(latencyP90), micros(latencyP99), micros(latencyMax)));
+        bldr.append(String.format("seats sold: %s revenue: $%.2f%n", seatsSold, revenue));
+        seatsByPrice.forEach((price, seats) -> bldr.append(String.format("  $%s x %s%n", price, seats)));
+        return bldr.toString();
+    }
+
+    private static long micros(Duration duration) {
+        return duration.toNanos() / 1_000;
+    }
+}
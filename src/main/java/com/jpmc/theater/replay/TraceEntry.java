@@ -0,0 +1,18 @@
+package com.jpmc.theater.replay;
+
+import com.jpmc.theater.Customer;
+import lombok.Value;
+
+import java.time.LocalDateTime;
+
+/*
+One recorded call to Theater.reserve
+ */
+@Value
+public class TraceEntry {
+    private LocalDateTime requestTime;
+    private Customer customer;
+    private String movieTitle;
+    private LocalDateTime showTime;
+    private int tickets;
+}
@@ -0,0 +1,119 @@
+package com.jpmc.theater.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/*
+Bounded, thread safe cache whose entries expire a fixed time after being written.
+
+Keys are spread over independently locked segments so lookups never contend on one lock.
+Each segment keeps entries in write order: once a segment is full its oldest entry is dropped,
+and expired entries are swept from the head whenever the segment is written to.
+ */
+public class ExpiringCache<K, V> {
+    private static final int SEGMENTS = 16;
+
+    private final List<Segment<K, V>> segments;
+    private final long ttlNanos;
+    private final LongSupplier ticker;
+
+    public ExpiringCache(int maxSize, Duration ttl) {
+        this(maxSize, ttl, System::nanoTime);
+    }
+
+    public ExpiringCache(int maxSize, Duration ttl, LongSupplier ticker) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("Cache size must be at least 1");
+        }
+        if (ttl == null || ttl.isNegative() || ttl.isZero()) {
+            throw new IllegalArgumentException("Cache ttl must be positive");
+        }
+        int segmentCount = Math.min(SEGMENTS, Integer.highestOneBit(maxSize));
+        // split maxSize exactly so the segments never hold more than maxSize between them
+        int perSegment = maxSize / segmentCount;
+        int remainder = maxSize % segmentCount;
+        this.segments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            segments.add(new Segment<>(i < remainder ? perSegment + 1 : perSegment));
+        }
+        this.ttlNanos = ttl.toNanos();
+        this.ticker = ticker;
+    }
+
+    public V get(K key) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = ticker.getAsLong();
+        synchronized (segment) {
+            Timestamped<V> entry = segment.map.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (now - entry.writtenAt >= ttlNanos) {
+                segment.map.remove(key);
+                return null;
+            }
+            return entry.value;
+        }
+    }
+
+    public void put(K key, V value) {
+        Segment<K, V> segment = segmentFor(key);
+        long now = ticker.getAsLong();
+        synchronized (segment) {
+            // re-insert so the entry moves to the tail of the write order
+            segment.map.remove(key);
+            segment.map.put(key, new Timestamped<>(value, now));
+            Iterator<Timestamped<V>> it = segment.map.values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().writtenAt < ttlNanos) {
+                    break;
+                }
+                it.remove();
+            }
+        }
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<K, V> segment : segments) {
+            synchronized (segment) {
+                size += segment.map.size();
+            }
+        }
+        return size;
+    }
+
+    private Segment<K, V> segmentFor(K key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments.get(h & (segments.size() - 1));
+    }
+
+    private static class Segment<K, V> {
+        private final Map<K, Timestamped<V>> map;
+
+        Segment(int capacity) {
+            this.map = new LinkedHashMap<>(16, 0.75f, false) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<K, Timestamped<V>> eldest) {
+                    return size() > capacity;
+                }
+            };
+        }
+    }
+
+    private static class Timestamped<V> {
+        private final V value;
+        private final long writtenAt;
+
+        Timestamped(V value, long writtenAt) {
+            this.value = value;
+            this.writtenAt = writtenAt;
+        }
+    }
+}
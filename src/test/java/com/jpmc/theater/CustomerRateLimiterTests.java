@@ -0,0 +1,147 @@
+package com.jpmc.theater;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CustomerRateLimiterTests {
+    private final AtomicLong now = new AtomicLong();
+    private final Customer bot = new Customer("bot", "bot-1");
+    private final Customer fan = new Customer("fan", "fan-1");
+
+    @Test
+    void burstThenReject() {
+        CustomerRateLimiter limiter = new CustomerRateLimiter(3, 1, Duration.ofMinutes(1), now::get);
+        assertTrue(limiter.tryAcquire(bot));
+        assertTrue(limiter.tryAcquire(bot));
+        assertTrue(limiter.tryAcquire(bot));
+        assertFalse(limiter.tryAcquire(bot));
+        assertEquals(1, limiter.getRejectedCount());
+
+        // other customers have their own bucket
+        assertTrue(limiter.tryAcquire(fan));
+    }
+
+    @Test
+    void refillsLazily() {
+        CustomerRateLimiter limiter = new CustomerRateLimiter(1, 2, Duration.ofMinutes(1), now::get);
+        assertTrue(limiter.tryAcquire(bot));
+        assertFalse(limiter.tryAcquire(bot));
+        now.addAndGet(Duration.ofMillis(500).toNanos());
+        assertTrue(limiter.tryAcquire(bot));
+        assertFalse(limiter.tryAcquire(bot));
+    }
+
+    @Test
+    void idleCustomersAreEvicted() {
+        CustomerRateLimiter limiter = new CustomerRateLimiter(5, 5, Duration.ofSeconds(30), now::get);
+        for (int i = 0; i < 1000; i++) {
+            limiter.tryAcquire(new Customer("c", "id-" + i));
+        }
+        assertEquals(1000, limiter.trackedCustomers());
+
+        now.addAndGet(Duration.ofSeconds(31).toNanos());
+        // each request only sweeps a batch
+        limiter.tryAcquire(fan);
+        assertEquals(1001 - CustomerRateLimiter.SWEEP_BATCH, limiter.trackedCustomers());
+        for (int i = 0; i < 1000 / CustomerRateLimiter.SWEEP_BATCH + 1; i++) {
+            limiter.tryAcquire(fan);
+        }
+        assertEquals(1, limiter.trackedCustomers());
+    }
+
+    @Test
+    void idleTimeoutNeverShorterThanRefill() {
+        // an empty bucket takes 10s to refill, so a 1s idle timeout must not forget the debt
+        CustomerRateLimiter limiter = new CustomerRateLimiter(10, 1, Duration.ofSeconds(1), now::get);
+        for (int i = 0; i < 10; i++) {
+            assertTrue(limiter.tryAcquire(bot));
+        }
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        limiter.tryAcquire(fan);
+        assertEquals(2, limiter.trackedCustomers());
+        assertTrue(limiter.tryAcquire(bot));
+        assertTrue(limiter.tryAcquire(bot));
+        assertFalse(limiter.tryAcquire(bot));
+    }
+
+    @Test
+    void theaterRejectsBeforeBooking() {
+        CustomerRateLimiter limiter = new CustomerRateLimiter(2, 1, Duration.ofMinutes(1), now::get);
+        Theater theater = Theater.withSampleSchedule(LocalDateProvider.INSTANCE);
+        Theater limited = new Theater(LocalDateProvider.INSTANCE, limiter);
+        Showing showing = theater.getAllShowings().get(0);
+        limited.addSchedule(showing.getMovie(), showing.getShowStartTime());
+        LocalDateTime time = showing.getShowStartTime();
+
+        assertNotNull(limited.reserve(bot, 1, showing.getMovie(), time));
+        Reservation booked = limited.reserve("k1", bot, 1, showing.getMovie(), time);
+        assertNotNull(booked);
+        ReservationThrottledException ex = assertThrows(ReservationThrottledException.class,
+                () -> limited.reserve(bot, 1, showing.getMovie(), time));
+        assertEquals(bot.getId(), ex.getCustomerId());
+        assertThrows(ReservationThrottledException.class, () -> limited.reserve("k2", bot, 1, showing.getMovie(), time));
+        assertEquals(2, limited.getAllReservations().size());
+        assertNotNull(limited.reserve(fan, 1, showing.getMovie(), time));
+
+        // retrying a booking that went through is answered from the idempotency cache, even with an empty bucket
+        assertSame(booked, limited.reserve("k1", bot, 1, showing.getMovie(), time));
+        assertEquals(2, limiter.getRejectedCount());
+    }
+
+    @Test
+    void concurrentRetriesAreChargedOnce() throws Exception {
+        CustomerRateLimiter limiter = new CustomerRateLimiter(1, 1, Duration.ofMinutes(1), now::get);
+        Theater limited = new Theater(LocalDateProvider.INSTANCE, limiter);
+        Showing showing = Theater.withSampleSchedule(LocalDateProvider.INSTANCE).getAllShowings().get(0);
+        limited.addSchedule(showing.getMovie(), showing.getShowStartTime());
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Reservation>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(pool.submit(() -> limited.reserve("storm", bot, 2, showing.getMovie(), showing.getShowStartTime())));
+            }
+            Reservation expected = futures.get(0).get();
+            assertNotNull(expected);
+            for (Future<Reservation> f : futures) {
+                assertSame(expected, f.get());
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(0, limiter.getRejectedCount());
+        assertEquals(1, limited.getAllReservations().size());
+    }
+
+    @Test
+    void nullCustomerIdRejectedWhenLimiting() {
+        CustomerRateLimiter limiter = new CustomerRateLimiter(1, 1, Duration.ofMinutes(1), now::get);
+        Theater limited = new Theater(LocalDateProvider.INSTANCE, limiter);
+        Showing showing = Theater.withSampleSchedule(LocalDateProvider.INSTANCE).getAllShowings().get(0);
+        limited.addSchedule(showing.getMovie(), showing.getShowStartTime());
+        Customer anonymous = new Customer("anon", null);
+
+        assertThrows(IllegalArgumentException.class, () -> limited.reserve(anonymous, 1, showing.getMovie(), showing.getShowStartTime()));
+        assertThrows(IllegalArgumentException.class, () -> limited.reserve("k", anonymous, 1, showing.getMovie(), showing.getShowStartTime()));
+        // without a limiter the id is not needed, as before
+        assertNotNull(Theater.withSampleSchedule(LocalDateProvider.INSTANCE).reserve(anonymous, 1, showing.getMovie(), showing.getShowStartTime()));
+    }
+
+    @Test
+    void invalidRatesRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new CustomerRateLimiter(0, 1, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new CustomerRateLimiter(1, 0, Duration.ofMinutes(1)));
+    }
+}
@@ -2,9 +2,38 @@ package com.jpmc.theater;
 
 import org.junit.jupiter.api.Test;
 
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneOffset;
+
+import static org.junit.jupiter.api.Assertions.*;
+
 public class LocalDateProviderTests {
     @Test
     void makeSureCurrentTime() {
         System.out.println("current time is - " + LocalDateProvider.INSTANCE.currentDate());
     }
+
+    @Test
+    void clockProviderFollowsAdjustableClock() {
+        AdjustableClock clock = new AdjustableClock(LocalDateTime.of(2022, 3, 6, 23, 30), ZoneOffset.UTC);
+        DateProvider provider = new ClockDateProvider(clock);
+        assertEquals(LocalDate.of(2022, 3, 6), provider.currentDate());
+
+        clock.advance(Duration.ofHours(1));
+        assertEquals(LocalDate.of(2022, 3, 7), provider.currentDate());
+
+        clock.setTime(LocalDateTime.of(LocalDate.of(2030, 1, 1), LocalTime.NOON));
+        assertEquals(LocalDate.of(2030, 1, 1), provider.currentDate());
+    }
+
+    @Test
+    void simulatedDateDrivesSchedule() {
+        AdjustableClock clock = new AdjustableClock(LocalDateTime.of(2022, 1, 7, 8, 0), ZoneOffset.UTC);
+        Theater theater = Theater.withSampleSchedule(new ClockDateProvider(clock));
+        assertTrue(theater.scheduleToString().startsWith("2022-01-07"));
+        theater.getAllShowings().forEach(s -> assertEquals(7, s.getShowStartTime().getDayOfMonth()));
+    }
 }
@@ -75,6 +75,20 @@ public class ShowingTest {
         assertEquals((movie.getTicketPrice() - 5.0), price);
     }
 
+    @Test
+    void priceByIndexMatchesPriceByList() {
+        Movie movie = new Movie("Turning Red", Duration.ofMinutes(85), 11, 1);
+        List<Showing> showings = List.of(
+                new Showing(movie, LocalDateTime.of(LocalDate.of(2022, 1, 7), LocalTime.of(9, 0))),
+                new Showing(movie, LocalDateTime.of(LocalDate.of(2022, 1, 7), LocalTime.of(12, 0))),
+                new Showing(movie, LocalDateTime.of(LocalDate.of(2022, 1, 7), LocalTime.of(18, 0))),
+                new Showing(movie, LocalDateTime.of(LocalDate.of(2022, 1, 8), LocalTime.of(20, 0)))
+        );
+        for (int i = 0; i < showings.size(); i++) {
+            assertEquals(showings.get(i).calculateTicketPrice(showings), showings.get(i).calculateTicketPrice(i));
+        }
+    }
+
     // we can use auto generative tests using junit-quickcheck to auto generate a series of samples of Movies and showings
     // and test property of max discounts.
 }
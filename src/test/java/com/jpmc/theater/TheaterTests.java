@@ -14,7 +14,13 @@ import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.LocalTime;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.stream.Collectors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -99,6 +105,192 @@ public class TheaterTests {
         assertEquals(1, theater.getAllReservations().size());
     } 
 
+    @Test
+    void retryWithSameKeyReturnsOriginalReservation() {
+        Showing showing = theater.getAllShowings().get(0);
+        Customer customer = new Customer("x", "1");
+        Reservation first = theater.reserve("req-1", customer, 2, showing.getMovie(), showing.getShowStartTime());
+        Reservation retry = theater.reserve("req-1", customer, 2, showing.getMovie(), showing.getShowStartTime());
+        assertNotNull(first);
+        assertSame(first, retry);
+        assertEquals(1, theater.getAllReservations().size());
+
+        // same key from a different customer is a different request
+        theater.reserve("req-1", new Customer("y", "2"), 2, showing.getMovie(), showing.getShowStartTime());
+        assertEquals(2, theater.getAllReservations().size());
+    }
+
+    @Test
+    void concurrentRetriesReserveOnce() throws Exception {
+        Showing showing = theater.getAllShowings().get(0);
+        Customer customer = new Customer("x", "1");
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Reservation>> futures = new ArrayList<>();
+            for (int i = 0; i < 50; i++) {
+                futures.add(pool.submit(() -> theater.reserve("storm", customer, 3, showing.getMovie(), showing.getShowStartTime())));
+            }
+            Reservation expected = futures.get(0).get();
+            for (Future<Reservation> f : futures) {
+                assertSame(expected, f.get());
+            }
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+        assertEquals(1, theater.getAllReservations().size());
+    }
+
+    @Test
+    void reusedKeyWithDifferentRequestRejected() {
+        List<Showing> showings = theater.getMovieShowings(theater.getAllShowings().get(0).getMovie());
+        Showing showing = showings.get(0);
+        Customer customer = new Customer("x", "1");
+        assertNotNull(theater.reserve("req-3", customer, 2, showing.getMovie(), showing.getShowStartTime()));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> theater.reserve("req-3", customer, 3, showing.getMovie(), showing.getShowStartTime()));
+        Throwable ex = assertThrows(IllegalArgumentException.class,
+                () -> theater.reserve("req-3", customer, 2, showing.getMovie(), showings.get(1).getShowStartTime()));
+        assertTrue(ex.getMessage().contains("req-3"));
+        assertEquals(1, theater.getAllReservations().size());
+
+        // seconds are dropped from show times everywhere, so they do not make a retry different
+        assertNotNull(theater.reserve("req-3", customer, 2, showing.getMovie(), showing.getShowStartTime().plusSeconds(30)));
+    }
+
+    @Test
+    void failedRequestIsNotRemembered() {
+        Showing showing = theater.getAllShowings().get(0);
+        Customer customer = new Customer("x", "1");
+        assertNull(theater.reserve("req-2", customer, 1, showing.getMovie(), showing.getShowStartTime().minusHours(1)));
+        assertNotNull(theater.reserve("req-2", customer, 1, showing.getMovie(), showing.getShowStartTime()));
+    }
+
+    @Test
+    void blankIdempotencyKeyRejected() {
+        Showing showing = theater.getAllShowings().get(0);
+        assertThrows(IllegalArgumentException.class,
+                () -> theater.reserve(" ", new Customer("x", "1"), 1, showing.getMovie(), showing.getShowStartTime()));
+    }
+
+    @Test
+    void alternativesWhenShowingIsFull() {
+        Movie turningRed = theater.getAllShowings().stream()
+                .map(Showing::getMovie).filter(m -> m.getTitle().equals("Turning Red")).findFirst().get();
+        List<Showing> showings = theater.getMovieShowings(turningRed);
+        LocalDateTime full = showings.get(1).getShowStartTime(); // 14:30
+        assertNotNull(theater.reserve(new Customer("x", "1"), 100, turningRed, full));
+        assertNull(theater.reserve(new Customer("y", "2"), 2, turningRed, full));
+
+        List<AlternativeShowing> alternatives = theater.findAlternatives(turningRed, full, 2, Duration.ofHours(2), 10);
+        assertFalse(alternatives.stream().anyMatch(a -> a.getShowing() == showings.get(1)));
+        // 12:50 Batman and 16:10 Spider-Man are equally near so the cheaper comes first, then the other Turning Red showings
+        assertEquals(List.of("12:50", "16:10", "19:30", "09:00"),
+                alternatives.stream().map(a -> a.getShowing().getShowStartTime().toLocalTime().toString()).collect(Collectors.toList()));
+        AlternativeShowing nearest = alternatives.get(0);
+        assertEquals(Duration.ofMinutes(100), nearest.getTimeDistance());
+        assertEquals(100, nearest.getRemainingSeats());
+        List<Showing> batMan = theater.getMovieShowings(nearest.getShowing().getMovie());
+        assertEquals(nearest.getShowing().calculateTicketPrice(batMan), nearest.getTicketPrice());
+        assertTrue(nearest.getTicketPrice() < alternatives.get(1).getTicketPrice());
+
+        assertEquals(2, theater.findAlternatives(turningRed, full, 2, Duration.ofHours(2), 2).size());
+    }
+
+    @Test
+    void reserveChargesTheQuotedPrice() {
+        for (Showing showing : theater.getAllShowings()) {
+            List<AlternativeShowing> quotes = theater.findAlternatives(showing.getMovie(), showing.getShowStartTime(), 1, Duration.ZERO, 100);
+            AlternativeShowing quote = quotes.stream().filter(a -> a.getShowing() == showing).findFirst().get();
+            Reservation reservation = theater.reserve(new Customer("x", "1"), 1, showing.getMovie(), showing.getShowStartTime());
+            assertEquals(quote.getTicketPrice(), reservation.getPricePerPerson(), showing.toString());
+        }
+        // the last Turning Red showing gets no sequence discount
+        Movie turningRed = theater.getAllReservations().stream().map(r -> r.getShowing().getMovie())
+                .filter(m -> m.getTitle().equals("Turning Red")).findFirst().get();
+        Showing last = theater.getMovieShowings(turningRed).get(2);
+        assertEquals(11.0, theater.getAllReservations().stream().filter(r -> r.getShowing() == last).findFirst().get().getPricePerPerson());
+    }
+
+    @Test
+    void alternativesRejectBadInput() {
+        Showing showing = theater.getAllShowings().get(0);
+        Movie movie = showing.getMovie();
+        LocalDateTime time = showing.getShowStartTime();
+        assertThrows(IllegalArgumentException.class, () -> theater.findAlternatives(movie, time, 1, Duration.ofHours(-1), 5));
+        assertThrows(IllegalArgumentException.class, () -> theater.findAlternatives(movie, time, 1, null, 5));
+        assertThrows(IllegalArgumentException.class, () -> theater.findAlternatives(movie, time, 1, Duration.ZERO, -1));
+        assertThrows(IllegalArgumentException.class, () -> theater.findAlternatives(movie, time, 0, Duration.ZERO, 5));
+        assertThrows(IllegalArgumentException.class, () -> theater.findAlternatives(null, time, 1, Duration.ZERO, 5));
+    }
+
+    @Test
+    void clearSchedulesKeepsSeatsSoldForOldShowings() {
+        Showing showing = theater.getAllShowings().get(0);
+        theater.reserve(new Customer("x", "1"), 100, showing.getMovie(), showing.getShowStartTime());
+        assertNull(theater.findFirstShowingWithCapacity(List.of(showing), 1));
+
+        // the old showing is still as sold out as getAllReservations says
+        theater.clearSchedules();
+        assertNull(theater.findFirstShowingWithCapacity(List.of(showing), 1));
+
+        // scheduling again creates a new showing with its own seats
+        theater.addSchedule(showing.getMovie(), showing.getShowStartTime());
+        assertNotNull(theater.reserve(new Customer("x", "1"), 100, showing.getMovie(), showing.getShowStartTime()));
+    }
+
+    @Test
+    void alternativesMatchMovieByValue() {
+        Movie sameTurningRed = new Movie("Turning Red", Duration.ofMinutes(85), 11, 0);
+        LocalDateTime time = theater.getMovieShowings(sameTurningRed).get(1).getShowStartTime(); // 14:30
+
+        List<AlternativeShowing> alternatives = theater.findAlternatives(sameTurningRed, time, 1, Duration.ofHours(2), 20);
+        assertEquals(alternatives.size(), alternatives.stream().map(AlternativeShowing::getShowing).distinct().count());
+        assertEquals(1, alternatives.stream().filter(a -> a.getShowing().getShowStartTime().equals(time)).count());
+    }
+
+    @Test
+    void indexedPricesMatchFullRepricing() {
+        theater.clearSchedules();
+        Movie movie = new Movie("Turning Red", Duration.ofMinutes(85), 11, 0);
+        LocalDate day = LocalDate.of(2022, 1, 7);
+        // out of order, with a repeated time, so showings shift position as others arrive
+        for (LocalTime time : List.of(LocalTime.of(14, 0), LocalTime.of(9, 30), LocalTime.of(20, 0), LocalTime.of(9, 30),
+                                      LocalTime.of(11, 0), LocalTime.of(9, 0))) {
+            theater.addSchedule(movie, LocalDateTime.of(day, time));
+            List<Showing> showings = theater.getMovieShowings(movie);
+            List<ScheduleEntry> entries = theater.querySchedule(ScheduleQuery.builder().movie(movie).build()).getEntries();
+            for (ScheduleEntry e : entries) {
+                assertEquals(e.getShowing().computeSequence(showings), e.getSequence());
+                assertEquals(e.getShowing().calculateTicketPrice(showings), e.getTicketPrice());
+            }
+        }
+    }
+
+    @Test
+    void largeScheduleBuildsQuickly() {
+        theater.clearSchedules();
+        Movie movie = new Movie("Turning Red", Duration.ofMinutes(85), 11, 0);
+        LocalDate day = LocalDate.of(2022, 1, 7);
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> {
+            for (int i = 0; i < 5000; i++) {
+                theater.addSchedule(movie, LocalDateTime.of(day, LocalTime.of(9, 0).plusMinutes(i % 840)));
+            }
+        });
+        assertEquals(5000, theater.getMovieShowings(movie).size());
+    }
+
+    @Test
+    void alternativesRespectSeatCount() {
+        Showing showing = theater.getAllShowings().get(0);
+        theater.reserve(new Customer("x", "1"), 95, showing.getMovie(), showing.getShowStartTime());
+        assertTrue(theater.findAlternatives(showing.getMovie(), showing.getShowStartTime(), 6, Duration.ZERO, 10).stream()
+                .noneMatch(a -> a.getShowing() == showing));
+        assertEquals(5, theater.findAlternatives(showing.getMovie(), showing.getShowStartTime(), 5, Duration.ZERO, 10).stream()
+                .filter(a -> a.getShowing() == showing).findFirst().get().getRemainingSeats());
+    }
+
     @Test
     void firstMovieDiscount() {
         Movie movie = theater.getAllShowings().get(0).getMovie();
@@ -139,6 +331,108 @@ public class TheaterTests {
         assertEquals(allShowings.get(0).calculateTicketPrice(allShowings) , showing1.getInt("ticketPrice"));
     }
 
+    @Test
+    void queryPagesThroughWholeScheduleInTimeOrder() {
+        List<String> times = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            SchedulePage page = theater.querySchedule(ScheduleQuery.builder().pageSize(4).cursor(cursor).build());
+            page.getEntries().forEach(e -> times.add(e.getShowing().getShowStartTime().toLocalTime().toString()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        assertEquals(3, pages);
+        assertEquals(List.of("09:00", "11:00", "12:50", "14:30", "16:10", "17:50", "19:30", "21:10", "23:00"), times);
+    }
+
+    @Test
+    void queryFiltersByMovieWindowAndPrice() {
+        Movie turningRed = theater.getAllShowings().stream()
+                .map(Showing::getMovie).filter(m -> m.getTitle().equals("Turning Red")).findFirst().get();
+        LocalDate day = theater.getAllShowings().get(0).getShowStartTime().toLocalDate();
+
+        SchedulePage byMovie = theater.querySchedule(ScheduleQuery.builder().movie(turningRed).build());
+        assertEquals(3, byMovie.getEntries().size());
+        assertNull(byMovie.getNextCursor());
+        assertEquals(List.of(1, 2, 3), byMovie.getEntries().stream().map(ScheduleEntry::getSequence).collect(Collectors.toList()));
+
+        SchedulePage byWindow = theater.querySchedule(ScheduleQuery.builder()
+                .from(LocalDateTime.of(day, LocalTime.of(12, 0)))
+                .to(LocalDateTime.of(day, LocalTime.of(17, 50)))
+                .build());
+        assertEquals(4, byWindow.getEntries().size());
+
+        SchedulePage byPrice = theater.querySchedule(ScheduleQuery.builder().minPrice(7.0).maxPrice(9.0)
+                .sortBy(ScheduleQuery.SortBy.PRICE).build());
+        assertFalse(byPrice.getEntries().isEmpty());
+        double last = 0.0;
+        for (ScheduleEntry e : byPrice.getEntries()) {
+            assertTrue(e.getTicketPrice() >= 7.0 && e.getTicketPrice() <= 9.0);
+            assertTrue(e.getTicketPrice() >= last);
+            last = e.getTicketPrice();
+        }
+    }
+
+    @Test
+    void queryJsonRendersOnlyThePage() {
+        JsonObject page = Json.createReader(new StringReader(
+                theater.scheduleToJson(ScheduleQuery.builder().sortBy(ScheduleQuery.SortBy.PRICE).pageSize(2).build()))).readObject();
+        assertEquals(2, page.getJsonArray("showings").size());
+        String cursor = page.getString("nextCursor");
+
+        JsonObject rest = Json.createReader(new StringReader(
+                theater.scheduleToJson(ScheduleQuery.builder().sortBy(ScheduleQuery.SortBy.PRICE).pageSize(50).cursor(cursor).build()))).readObject();
+        assertEquals(theater.getAllShowings().size() - 2, rest.getJsonArray("showings").size());
+        assertFalse(rest.containsKey("nextCursor"));
+    }
+
+    @Test
+    void renderingIsSafeDuringScheduleChanges() throws Exception {
+        Movie movie = theater.getAllShowings().get(0).getMovie();
+        LocalDate day = theater.getAllShowings().get(0).getShowStartTime().toLocalDate();
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        try {
+            // bounded by time rather than rebuilds so this stays a quick race check
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(200);
+            Future<?> writer = pool.submit(() -> {
+                while (System.nanoTime() - deadline < 0) {
+                    theater.clearSchedules();
+                    for (int m = 0; m < 60; m++) {
+                        theater.addSchedule(movie, LocalDateTime.of(day, LocalTime.of(9 + m / 6, (m % 6) * 10)));
+                    }
+                }
+            });
+            while (!writer.isDone()) {
+                assertNotNull(theater.scheduleToString());
+                assertNotNull(theater.scheduleToJson());
+                theater.querySchedule(ScheduleQuery.builder().movie(movie).build()).getEntries()
+                        .forEach(e -> assertTrue(e.getSequence() >= 1));
+            }
+            writer.get();
+        } finally {
+            pool.shutdown();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    void queryMatchesMovieByValue() {
+        Movie sameTurningRed = new Movie("Turning Red", Duration.ofMinutes(85), 11, 0);
+        SchedulePage page = theater.querySchedule(ScheduleQuery.builder().movie(sameTurningRed).build());
+        assertEquals(3, page.getEntries().size());
+        page.getEntries().forEach(e -> assertEquals(sameTurningRed, e.getShowing().getMovie()));
+    }
+
+    @Test
+    void invalidQueriesRejected() {
+        assertThrows(IllegalArgumentException.class, () -> ScheduleQuery.builder().pageSize(0).build());
+        assertThrows(IllegalArgumentException.class, () -> ScheduleQuery.builder().minPrice(5.0).maxPrice(1.0).build());
+        assertThrows(IllegalArgumentException.class,
+                () -> theater.querySchedule(ScheduleQuery.builder().cursor("not a cursor").build()));
+    }
+
     // used for Tests
     private void generateSampleSchedules() {
         Movie turningRed = new Movie("Turning Red", Duration.ofMinutes(85), 11, 0);
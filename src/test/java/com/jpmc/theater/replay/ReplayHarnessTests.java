@@ -0,0 +1,101 @@
+package com.jpmc.theater.replay;
+
+import com.jpmc.theater.AdjustableClock;
+import com.jpmc.theater.ClockDateProvider;
+import com.jpmc.theater.CustomerRateLimiter;
+import com.jpmc.theater.Theater;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringReader;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplayHarnessTests {
+    private static final String TRACE = String.join("\n",
+            "# requestTime,customerId,customerName,movieTitle,showTime,tickets",
+            "2022-01-07T08:00:02,2,Jane Doe,The Batman,2022-01-07T12:50,60",
+            "2022-01-07T08:00:00,1,John Doe,Turning Red,2022-01-07T09:00,2",
+            "",
+            "2022-01-07T08:00:03,3,Max Doe,The Batman,2022-01-07T12:50,60",
+            "2022-01-07T08:00:04,4,Ann Doe,Turning Red,2022-01-07T10:00,1"
+    );
+
+    @Test
+    void traceIsParsedAndSorted() throws Exception {
+        List<TraceEntry> trace = BookingTrace.read(new StringReader(TRACE));
+        assertEquals(4, trace.size());
+        assertEquals("1", trace.get(0).getCustomer().getId());
+        assertEquals(LocalDateTime.of(2022, 1, 7, 9, 0), trace.get(0).getShowTime());
+        assertEquals(2, trace.get(0).getTickets());
+    }
+
+    @Test
+    void badLineIsRejected() {
+        Throwable ex = assertThrows(IllegalArgumentException.class,
+                () -> BookingTrace.read(new StringReader("2022-01-07T08:00,1,x,The Batman,2022-01-07T12:50")));
+        assertTrue(ex.getMessage().contains("Line 1"));
+    }
+
+    @Test
+    void replayReportsOutcomes() throws Exception {
+        List<TraceEntry> trace = BookingTrace.read(new StringReader(TRACE));
+        AdjustableClock clock = new AdjustableClock(trace.get(0).getRequestTime(), ZoneOffset.UTC);
+        Theater theater = Theater.withSampleSchedule(new ClockDateProvider(clock));
+
+        ReplayReport report = new ReplayHarness(theater, clock, 4, ReplayHarness.MAX_SPEED).replay(trace);
+
+        assertEquals(4, report.getRequests());
+        // one of the two 60 seat requests no longer fits, 10:00 is not a showing
+        assertEquals(2, report.getReservations());
+        assertEquals(1, report.getSoldOut());
+        assertEquals(1, report.getNoShowing());
+        assertEquals(0, report.getThrottled());
+        assertEquals(62, report.getSeatsSold());
+        assertEquals(2 * 8.0 + 60 * 6.0, report.getRevenue());
+        assertEquals(LocalDateTime.of(2022, 1, 7, 8, 0, 4), LocalDateTime.ofInstant(clock.instant(), ZoneOffset.UTC));
+        assertTrue(report.getLatencyP50().compareTo(report.getLatencyMax()) <= 0);
+        assertFalse(report.summary().isEmpty());
+    }
+
+    @Test
+    void throttledRequestsReportedSeparately() throws Exception {
+        List<TraceEntry> trace = BookingTrace.read(new StringReader(String.join("\n",
+                "2022-01-07T08:00:00,1,John Doe,Turning Red,2022-01-07T09:00,2",
+                "2022-01-07T08:00:00,1,John Doe,Turning Red,2022-01-07T09:00,2",
+                "2022-01-07T08:00:00,1,John Doe,Turning Red,2022-01-07T09:00,2"
+        )));
+        AdjustableClock clock = new AdjustableClock(trace.get(0).getRequestTime(), ZoneOffset.UTC);
+        Theater scheduled = Theater.withSampleSchedule(new ClockDateProvider(clock));
+        Theater theater = new Theater(new ClockDateProvider(clock), new CustomerRateLimiter(1, 1, Duration.ofMinutes(1)));
+        scheduled.getAllShowings().forEach(s -> theater.addSchedule(s.getMovie(), s.getShowStartTime()));
+
+        ReplayReport report = new ReplayHarness(theater, clock, 1, ReplayHarness.MAX_SPEED).replay(trace);
+        assertEquals(1, report.getReservations());
+        assertEquals(2, report.getThrottled());
+        assertEquals(0, report.getSoldOut() + report.getNoShowing());
+    }
+
+    @Test
+    void pacedReplayHonoursRecordedGaps() throws Exception {
+        List<TraceEntry> trace = BookingTrace.read(new StringReader(TRACE));
+        AdjustableClock clock = new AdjustableClock(trace.get(0).getRequestTime(), ZoneOffset.UTC);
+        Theater theater = Theater.withSampleSchedule(new ClockDateProvider(clock));
+
+        // 4 recorded seconds at 40x should take at least 100ms
+        ReplayReport report = new ReplayHarness(theater, clock, 2, 40.0).replay(trace);
+        assertTrue(report.getElapsed().compareTo(Duration.ofMillis(100)) >= 0);
+    }
+
+    @Test
+    void percentileUsesNearestRank() {
+        long[] sorted = {1, 2, 3, 4, 5, 6, 7, 8, 9, 10};
+        assertEquals(Duration.ofNanos(5), ReplayHarness.percentile(sorted, 50));
+        assertEquals(Duration.ofNanos(9), ReplayHarness.percentile(sorted, 90));
+        assertEquals(Duration.ofNanos(10), ReplayHarness.percentile(sorted, 99));
+        assertEquals(Duration.ZERO, ReplayHarness.percentile(new long[0], 50));
+    }
+}
@@ -0,0 +1,59 @@
+package com.jpmc.theater.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExpiringCacheTests {
+
+    @Test
+    void entriesExpireAfterTtl() {
+        AtomicLong now = new AtomicLong();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(100, Duration.ofSeconds(10), now::get);
+        cache.put("a", "1");
+        now.addAndGet(Duration.ofSeconds(9).toNanos());
+        assertEquals("1", cache.get("a"));
+        now.addAndGet(Duration.ofSeconds(1).toNanos());
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    void expiredEntriesAreSweptOnWrite() {
+        AtomicLong now = new AtomicLong();
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(1, Duration.ofSeconds(1), now::get);
+        cache.put(1, 1);
+        now.addAndGet(Duration.ofSeconds(2).toNanos());
+        cache.put(2, 2);
+        assertEquals(1, cache.size());
+        assertEquals(Integer.valueOf(2), cache.get(2));
+    }
+
+    @Test
+    void sizeStaysBounded() {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(64, Duration.ofMinutes(1));
+        for (int i = 0; i < 100_000; i++) {
+            cache.put(i, i);
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(Integer.valueOf(99_999), cache.get(99_999));
+    }
+
+    @Test
+    void sizeBoundedWhenNotMultipleOfSegments() {
+        ExpiringCache<Integer, Integer> cache = new ExpiringCache<>(17, Duration.ofMinutes(1));
+        for (int i = 0; i < 10_000; i++) {
+            cache.put(i, i);
+        }
+        assertEquals(17, cache.size());
+    }
+
+    @Test
+    void invalidBoundsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new ExpiringCache<>(0, Duration.ofMinutes(1)));
+        assertThrows(IllegalArgumentException.class, () -> new ExpiringCache<>(10, Duration.ZERO));
+    }
+}